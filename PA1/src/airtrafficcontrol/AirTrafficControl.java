@@ -2,6 +2,7 @@ package airtrafficcontrol;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.IOException;
 import java.util.Random;
 
 import javax.swing.JButton;
@@ -46,38 +47,6 @@ public class AirTrafficControl implements ActionListener{
 	{
 		return 2 * index + 2;
 	}
-	/**
-	 * Exchanges the information of the two Airplanes.
-	 * @param airplane1 to be exchanged with airplane2.
-	 * @param airplane2 to be exchanged with airplane1.
-	 */
-	public static void exchange(Airplane airplane1, Airplane airplane2)
-	{
-		/*
-		 * The information of the airplane1 should be stored separately
-		 * and assigned separately because the approach code might be
-		 * an increased value, and the Airplane constructor calculates
-		 * the approach code based on the distance and elevation.
-		 */
-		String tempFlightNum = airplane1.getFlightNumber();
-		int tempDistance = airplane1.getDistance();
-		int tempElevation = airplane1.getElevation();
-		int tempAC = airplane1.getApproachCode();
-		/*
-		 * Copy airplane2's information into airplane1.
-		 */
-		airplane1.setFlightNumber(airplane2.getFlightNumber());
-		airplane1.setDistance(airplane2.getDistance());
-		airplane1.setElevation(airplane2.getElevation());
-		airplane1.setApproachCode(airplane2.getApproachCode());
-		/*
-		 * Set airplane2's information with the saved temps.
-		 */
-		airplane2.setFlightNumber(tempFlightNum);
-		airplane2.setDistance(tempDistance);
-		airplane2.setElevation(tempElevation);
-		airplane2.setApproachCode(tempAC);
-	}
 	/**
 	 * Heapifies the Airplane in the given index following the Max Heap Property.
 	 * @param airplanes is the Airplane Heap that is being passed in.
@@ -102,17 +71,42 @@ public class AirTrafficControl implements ActionListener{
 		}
 		if(largest != index)
 		{
-			exchange(airplanes.getAirplane(index), airplanes.getAirplane(largest));
+			airplanes.swap(index, largest);
 			maxAirplaneHeapify(airplanes, largest);
 		}
 	}
+	/**
+	 * Heapifies the Airplane in the given index of the sorted array, only looking at the first size Airplanes.
+	 * @param airplanes is the Airplane Heap whose sorted array is being heapified.
+	 * @param index of the Airplane being Heapified.
+	 * @param size of the part of the sorted array that is still a heap.
+	 */
+	public static void maxSortedAirplaneHeapify(AirplaneHeap airplanes, int index, int size)
+	{
+		int left = left(index);
+		int right = right(index);
+		int largest = index;
+		if(left < size && airplanes.getSortedAC(left) > airplanes.getSortedAC(largest))
+		{
+			largest = left;
+		}
+		if(right < size && airplanes.getSortedAC(right) > airplanes.getSortedAC(largest))
+		{
+			largest = right;
+		}
+		if(largest != index)
+		{
+			airplanes.swapSorted(index, largest);
+			maxSortedAirplaneHeapify(airplanes, largest, size);
+		}
+	}
 	/**
 	 * Builds a Max Heap out of the Airplane Heap.
 	 * @param airplanes is the Airplane Heap being passed in.
 	 */
 	public static void buildMaxAirplaneHeap(AirplaneHeap airplanes)
 	{
-		int size = airplanes.getAirplaneList().size();
+		int size = airplanes.getArraySize();
 		airplanes.setAirplaneHeapSize(size);
 		for(int i = size/2; i  >= 0; i--)// Size/2 is the index of the last parent to heapify.
 		{
@@ -120,17 +114,22 @@ public class AirTrafficControl implements ActionListener{
 		}
 	}
 	/**
-	 * Sorts the Airplane Heap using a heapsort algorithm.
+	 * Sorts the Airplanes of the Airplane Heap into its sorted array using a heapsort algorithm.
+	 * The heap itself is left as it is.
 	 * @param airplanes is the Airplane Heap being passed in.
 	 */
 	public static void AirplaneHeapSort(AirplaneHeap airplanes)
 	{
-		buildMaxAirplaneHeap(airplanes);
-		for(int i = airplanes.getArraySize()-1; i >= 1; i--)
+		airplanes.copyToSorted();
+		int size = airplanes.getSortedSize();
+		for(int i = size/2; i >= 0; i--) // Build a Max Heap in the sorted array first.
+		{
+			maxSortedAirplaneHeapify(airplanes, i, size);
+		}
+		for(int i = size-1; i >= 1; i--)
 		{
-			exchange(airplanes.getAirplane(0), airplanes.getAirplane(i)); // Exchange the max with the last element
-			airplanes.setAirplaneHeapSize(airplanes.getAirplaneHeapSize()-1); // Reduce the heap size by 1.
-			maxAirplaneHeapify(airplanes, 0); // Heapify the element put in the beginning to its proper spot.
+			airplanes.swapSorted(0, i); // Exchange the max with the last element
+			maxSortedAirplaneHeapify(airplanes, 0, i); // Heapify the element put in the beginning to its proper spot.
 		}
 	}
 	/**
@@ -144,19 +143,19 @@ public class AirTrafficControl implements ActionListener{
 	}
 	/**
 	 * Extracts the Maximum Airplane based on its Approach Code from the Airplane Heap.
+	 * If the Airplane Heap is pooled, give the returned Airplane back with releaseAirplane when it is no longer needed.
 	 * @param airplanes is the Airplane Heap being passed in.
 	 * @return the Airplane with the Max Approach Code.
 	 */
 	public static Airplane AirplaneHeapExtractMax(AirplaneHeap airplanes)
 	{
-		// If the heap is less than 0, then there was an underflow.
-		if(airplanes.getAirplaneHeapSize() < 0)
+		// If the heap is empty, then there was an underflow.
+		if(airplanes.getAirplaneHeapSize() < 1)
 		{
 			throw new RuntimeException("HeapUnderflowError");
 		}
 		Airplane max = airplanes.getAirplane(0); // save the max.
-		Airplane last = airplanes.getAirplane(airplanes.getAirplaneHeapSize()-1); // take the last element of the heap.
-		airplanes.getAirplaneList().set(0, last); // set the first element to the last.
+		airplanes.swap(0, airplanes.getAirplaneHeapSize()-1); // move the last element of the heap to the first, and the max past the heap.
 		airplanes.setAirplaneHeapSize(airplanes.getAirplaneHeapSize()-1); // reduce the heap size.
 		airplanes.updateArray();
 		maxAirplaneHeapify(airplanes, 0); // Heapify the first element to its proper spot.
@@ -178,7 +177,7 @@ public class AirTrafficControl implements ActionListener{
 		airplanes.getAirplane(index).setApproachCode(newAC);
 		while(index > 0 && airplanes.getAC(parent(index)) < airplanes.getAC(index))
 		{
-			exchange(airplanes.getAirplane(index), airplanes.getAirplane(parent(index)));
+			airplanes.swap(index, parent(index));
 			index = parent(index);
 		}
 	}
@@ -200,24 +199,32 @@ public class AirTrafficControl implements ActionListener{
 	 */
 	public static String createRandomFlight()
 	{
-		String flight = "";
-		Random rand = new Random();
+		if(flightNumberTable == null)
+		{
+			// Build every possible flight number once so that picking one later creates no new Strings.
+			flightNumberTable = new String[flightNumbers.length * 100];
+			for(int i = 0; i < flightNumberTable.length; i++)
+			{
+				flightNumberTable[i] = flightNumbers[i / 100] + (i % 100 / 10) + (i % 10);
+			}
+		}
 		int index = rand.nextInt(44);
 		int firstNum = rand.nextInt(10);
 		int secondNum = rand.nextInt(10);
-		return flight + flightNumbers[index] + firstNum + secondNum;
+		return flightNumberTable[index * 100 + firstNum * 10 + secondNum];
 	}
 	/**
-	 * Creates an Airplane with a given flight number and generates random distance and elevation.
+	 * Creates an Airplane with a given flight number and random distance and elevation,
+	 * reusing a spare Airplane from the Airplane Heap if it is pooled.
+	 * @param airplanes is the Airplane Heap that the new Airplane will be added into.
 	 * @param flightNum for this new Airplane.
 	 * @return an Airplane with a randomly generated distance and elevation along with an Approach Code.
 	 */
-	public static Airplane createAirplane(String flightNum)
+	public static Airplane createAirplane(AirplaneHeap airplanes, String flightNum)
 	{
-		Random rand = new Random();
 		int distanceToRunway = rand.nextInt(17001) + 3000; // [3000...20000]
 		int elevation = rand.nextInt(2001) + 1000; // [1000...3000]
-		return new Airplane(flightNum.toUpperCase(), distanceToRunway, elevation);
+		return airplanes.acquireAirplane(flightNum, distanceToRunway, elevation);
 	}
 	/**
 	 * Specifically generates 30 random Airplanes.
@@ -225,35 +232,30 @@ public class AirTrafficControl implements ActionListener{
 	 */
 	public static void thirtyFlights(AirplaneHeap airplanes)
 	{
-		Random rand = new Random();
 		for(int i = 0; i < 30; i++)
 		{
 			String flight = createRandomFlight(); // create a random flight number.
-			int distanceToRunway = rand.nextInt(17001) + 3000; // [3000...20000]
-			int elevation = rand.nextInt(2001) + 1000; // [1000...3000]
-			airplanes.addToAirplaneHeap(new Airplane(flight, distanceToRunway, elevation));	
+			airplanes.addToAirplaneHeap(createAirplane(airplanes, flight));
 		}
 	}
 	/**
-	 * Prints the entire ArrayList inside the Airplane Heap in descending order despite any heap size.
-	 * This is necessary for printing the sorted elements because the heap size is zero at that time.
+	 * Prints the sorted array of the Airplane Heap in descending order.
+	 * AirplaneHeapSort must be called first so that the sorted array is up to date.
 	 * @param airplanes is the Airplane Heap to be printed in a descending order.
 	 * @return
 	 */
 	public static String printArray(AirplaneHeap airplanes)
 	{
-		String printed = "";
-		for(int i = airplanes.getArraySize()-1, j = 1; i >= 0; i--, j++)
+		printed.setLength(0); // Reuse the same buffer instead of building a new String per line.
+		for(int i = airplanes.getSortedSize()-1, j = 1; i >= 0; i--, j++)
 		{
-			Airplane airline = airplanes.getAirplaneList().get(i);
-			printed += "  " + j + ". ( " + airline.getFlightNumber() +", D: "+ airline.getDistance() + 
-					" meters, H: " + airline.getElevation()+ " meters ) - AC: " + airline.getApproachCode();
+			appendAirplane(j, airplanes.getSortedAirplane(i));
 			if(i != 0)
 			{
-				printed += " \n";
+				printed.append(" \n");
 			}
 		}
-		return printed;
+		return printed.toString();
 	}
 	/**
 	 * Prints the Airplane Heap while it's in max heap form.
@@ -262,18 +264,27 @@ public class AirTrafficControl implements ActionListener{
 	 */
 	public static String printAirplaneHeap(AirplaneHeap airplanes)
 	{
-		String printed = "";
+		printed.setLength(0);
 		for(int i = 0; i < airplanes.getArraySize(); i++)
 		{
-			Airplane airline = airplanes.getAirplaneList().get(i);
-			printed += "  " + (i+1) + ". ( " + airline.getFlightNumber() +", D: "+ airline.getDistance() + 
-					" meters, H: " + airline.getElevation()+ " meters ) - AC: " + airline.getApproachCode();
+			appendAirplane(i+1, airplanes.getAirplane(i));
 			if(i != airplanes.getArraySize()-1)
 			{
-				printed += " \n";
+				printed.append(" \n");
 			}
 		}
-		return printed;
+		return printed.toString();
+	}
+	/**
+	 * Appends one numbered line describing the Airplane to the shared print buffer.
+	 * @param number of the line being printed.
+	 * @param airline is the Airplane being printed.
+	 */
+	private static void appendAirplane(int number, Airplane airline)
+	{
+		printed.append("  ").append(number).append(". ( ").append(airline.getFlightNumber())
+				.append(", D: ").append(airline.getDistance()).append(" meters, H: ")
+				.append(airline.getElevation()).append(" meters ) - AC: ").append(airline.getApproachCode());
 	}
 	
 	@Override
@@ -283,17 +294,23 @@ public class AirTrafficControl implements ActionListener{
 		 * Each button performs a specific task to display or modify the list.
 		 */
 		// Add Button action
-		if(e.getSource() == addButton && !flightNumText.getText().equals(""))
+		if(e.getSource() == addButton && !flightNumText.getText().equals("")
+				&& flightNumText.getText().length() <= Airplane.MAX_FLIGHT_NUMBER_LENGTH)
 		{
 			buildMaxAirplaneHeap(airplaneHeap); // Make sure it's a max heap.
-			maxAirplaneHeapInsert(airplaneHeap, createAirplane(flightNumText.getText())); // Insert the new Airplane.
+			Airplane newAirplane = createAirplane(airplaneHeap, flightNumText.getText().toUpperCase());
+			maxAirplaneHeapInsert(airplaneHeap, newAirplane); // Insert the new Airplane.
+			record(TrafficTrace.INSERT, newAirplane, 0, 0);
 			AirplaneHeapSort(airplaneHeap); // Sort right away for printing the updated list.
 			airplanesTextArea.setText(printArray(airplaneHeap)); // Displays the updated list in the GUI.
 			airplanesTextArea.setCaretPosition(0); // This makes sure that the scroll bar, if ever, stays on the top.
-			buildMaxAirplaneHeap(airplaneHeap); // Revert into the max heap form
-												// since the Airplanes are stored in a Max Heap.
 			flightNumText.setText(""); // Resets the text field that took the new flight number.
 		}
+		else if(e.getSource() == addButton && flightNumText.getText().length() > Airplane.MAX_FLIGHT_NUMBER_LENGTH)
+		{	// The flight number is too long to be added.
+			message.setText("Flight Numbers can have at most " + Airplane.MAX_FLIGHT_NUMBER_LENGTH + " characters");
+			details.setText("");
+		}
 		// Generate New List Button action.
 		else if(e.getSource() == generateButton)
 		{
@@ -303,6 +320,7 @@ public class AirTrafficControl implements ActionListener{
 			airplanesTextArea.setText(printArray(airplaneHeap)); // Display the new list into the GUI.
 			airplanesTextArea.setCaretPosition(0); // makes sure the the scroll bar is at the top.
 			buildMaxAirplaneHeap(airplaneHeap); // Build a Max Heap out of the list.
+			record(TrafficTrace.CLEAR, null, 0, 0);
 		}
 		// Peek Button action.
 		else if(e.getSource() == peekButton && !airplanesTextArea.getText().equals(""))
@@ -321,13 +339,14 @@ public class AirTrafficControl implements ActionListener{
 			{
 				buildMaxAirplaneHeap(airplaneHeap); // Put the list in a Max Heap form.
 				Airplane max = AirplaneHeapExtractMax(airplaneHeap); // Extract the max and save.
+				record(TrafficTrace.EXTRACT, null, 0, 0);
 				AirplaneHeapSort(airplaneHeap); // Sort the new list.
 				airplanesTextArea.setText(printArray(airplaneHeap)); // Displays the sorted list into the GUI.
 				airplanesTextArea.setCaretPosition(0); // Makes sure the scroll bar is at the top.
 				// Displays the message.
 				message.setText("                  " + max.getFlightNumber() + " is removed from the list");
 				details.setText(""); // Resets the lower part of the messages from previous displays.
-				buildMaxAirplaneHeap(airplaneHeap); // Store the list into a max heap.
+				airplaneHeap.releaseAirplane(max); // The removed Airplane is no longer needed, so it can be reused.
 			}
 			else
 			{
@@ -347,6 +366,7 @@ public class AirTrafficControl implements ActionListener{
 				{	// The increase key method throws an exception in that case so this will handle it.
 					buildMaxAirplaneHeap(airplaneHeap);
 					AirplaneHeapIncreaseKey(airplaneHeap, index-1, newAC);
+					record(TrafficTrace.INCREASE, null, index-1, newAC);
 					AirplaneHeapSort(airplaneHeap);
 					airplanesTextArea.setText(printArray(airplaneHeap));
 					airplanesTextArea.setCaretPosition(0);
@@ -354,7 +374,6 @@ public class AirTrafficControl implements ActionListener{
 					details.setText("");
 					indexText.setText("");
 					newACText.setText("");
-					buildMaxAirplaneHeap(airplaneHeap);
 				}
 				catch(RuntimeException error)
 				{	// If the new Approach Code is in fact smaller than the current one.
@@ -374,6 +393,64 @@ public class AirTrafficControl implements ActionListener{
 			details.setText("");
 		}
 	}
+	/**
+	 * Records a change to the Airplane Heap if the program is recording a trace.
+	 * A CLEAR records the heap being replaced with the current Airplane Heap.
+	 * @param op is the operation code from TrafficTrace.
+	 * @param airplane that was inserted, only used by INSERT.
+	 * @param index of the increased Airplane, only used by INCREASE.
+	 * @param newAC of the increased Airplane, only used by INCREASE.
+	 */
+	private static void record(byte op, Airplane airplane, int index, int newAC)
+	{
+		if(recorder == null)
+		{
+			return;
+		}
+		try
+		{
+			switch(op)
+			{
+				case TrafficTrace.INSERT:
+					recorder.recordInsert(airplane);
+					break;
+				case TrafficTrace.INCREASE:
+					recorder.recordIncrease(index, newAC);
+					break;
+				case TrafficTrace.EXTRACT:
+					recorder.recordExtract();
+					break;
+				case TrafficTrace.CLEAR:
+					recorder.recordClear();
+					recorder.recordHeap(airplaneHeap);
+					break;
+			}
+		}
+		catch(IOException error)
+		{
+			stopRecording(error);
+		}
+	}
+	/**
+	 * Stops recording the trace after it failed to be written, so the GUI can keep going without it.
+	 * @param error that stopped the recording.
+	 */
+	private static void stopRecording(IOException error)
+	{
+		System.err.println("Stopped recording the trace: " + error.getMessage());
+		if(recorder != null)
+		{
+			try
+			{
+				recorder.close();
+			}
+			catch(IOException ignored)
+			{
+				// The trace is already broken, nothing else to do.
+			}
+			recorder = null;
+		}
+	}
 	// GUI objects that will be used in the main program.
 	private static JPanel panel;
 	private static JFrame frame;
@@ -396,6 +473,14 @@ public class AirTrafficControl implements ActionListener{
 	private static JLabel message;
 	private static JLabel details;
 	private static AirplaneHeap airplaneHeap;
+	// Shared so that generating Airplanes doesn't create a new Random or StringBuilder every time.
+	private static final Random rand = new Random();
+	private static final StringBuilder printed = new StringBuilder();
+	private static String[] flightNumberTable;
+	// Records the changes to the Airplane Heap when the program is started with -record traceFile.
+	private static TraceRecorder recorder;
+	// Number of Airplanes the pooled Airplane Heap is planned for.
+	private static final int AIRPLANE_CAPACITY = 256;
 	/*
 	 * List of flight numbers that Airplanes have. Based on the list
 	 * provided in a wiki search about flight numbers.
@@ -412,11 +497,24 @@ public class AirTrafficControl implements ActionListener{
 			"BC", "WN", "SG", "NK", "TK",
 			"UA", "UP", "VA", "WS"
 	};
-	// Main program that will display the GUI
+	// Main program that will display the GUI. Start it with -record traceFile to record a traffic trace.
 	public static void main(String [] args)
 	{
-		airplaneHeap = new AirplaneHeap(); // Create an empty AirplaneHeap using the default constructor.
+		airplaneHeap = new AirplaneHeap(AIRPLANE_CAPACITY); // Create an empty, pooled AirplaneHeap.
 		thirtyFlights(airplaneHeap); // Generate 30 airplanes and store them into the AirplaneHeap.
+		buildMaxAirplaneHeap(airplaneHeap);
+		if(args.length == 2 && args[0].equals("-record"))
+		{
+			try
+			{
+				recorder = new TraceRecorder(args[1]);
+			}
+			catch(IOException error)
+			{
+				stopRecording(error);
+			}
+			record(TrafficTrace.CLEAR, null, 0, 0); // Start the trace with the first 30 airplanes.
+		}
 		
 		// Generate the frame of the GUI.
 		panel = new JPanel();
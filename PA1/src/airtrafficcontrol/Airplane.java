@@ -20,6 +20,31 @@ public class Airplane {
 		this.elevation = elevation;
 		calculateApproachCode();
 	}
+	/**
+	 * Creates a copy of the given Airplane, keeping its Approach Code even if it was increased.
+	 * @param other is the Airplane being copied.
+	 */
+	public Airplane(Airplane other)
+	{
+		flightNumber = other.flightNumber;
+		distance = other.distance;
+		elevation = other.elevation;
+		approachCode = other.approachCode;
+	}
+	/**
+	 * Reuses this Airplane for a different flight, the same way the constructor sets it up.
+	 * This lets a pooled Airplane Heap hand out old Airplanes instead of creating new ones.
+	 * @param newFlightNumber to be set for this Airplane.
+	 * @param newDistance to be set for this Airplane.
+	 * @param newElevation to be set for this Airplane.
+	 */
+	public void reset(String newFlightNumber, int newDistance, int newElevation)
+	{
+		flightNumber = newFlightNumber;
+		distance = newDistance;
+		elevation = newElevation;
+		calculateApproachCode();
+	}
 	/**
 	 * Gets the flight number of this Airplane.
 	 * @return flightNumber.
@@ -92,6 +117,8 @@ public class Airplane {
 		approachCode = newApproachCode;
 	}
 	
+	// Longest flight number an Airplane can be given, so it always fits in a trace record.
+	public static final int MAX_FLIGHT_NUMBER_LENGTH = 10;
 	private String flightNumber;
 	private int distance;
 	private int elevation;
@@ -1,8 +1,14 @@
 package airtrafficcontrol;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 /**
  * Models a heap of Airplanes that can be sorted.
+ * The Airplanes are stored in an array that only grows when it is full, doubling its capacity.
+ * The heap lives in the front of the array, and a separate sorted array holds the sorted
+ * list so that sorting never has to touch the heap.
+ * Clearing is not constant time: a pooled heap copies its Airplanes back into the pool, and a heap
+ * that isn't pooled empties their slots so they can be garbage collected.
  * @author Jerom Estrada
  *
  */
@@ -12,9 +18,11 @@ public class AirplaneHeap {
 	 */
 	public AirplaneHeap()
 	{
-		airplanes = new ArrayList<Airplane>();
+		airplanes = new Airplane[DEFAULT_CAPACITY];
+		sortedAirplanes = new Airplane[DEFAULT_CAPACITY];
 		arraySize = 0;
 		heapSize = 0;
+		sortedSize = 0;
 	}
 	/**
 	 * Creates a heap of Airplanes using the passed in ArrayList of Airplanes.
@@ -22,9 +30,32 @@ public class AirplaneHeap {
 	 */
 	public AirplaneHeap(ArrayList<Airplane> airplanes)
 	{
-		this.airplanes = airplanes;
+		this.airplanes = airplanes.toArray(new Airplane[Math.max(airplanes.size(), DEFAULT_CAPACITY)]);
+		sortedAirplanes = new Airplane[this.airplanes.length];
 		heapSize = airplanes.size();
 		arraySize = airplanes.size();
+		sortedSize = 0;
+	}
+	/**
+	 * Creates an empty, pooled heap of Airplanes that can hold the given capacity without growing.
+	 * The Airplanes are created up front in a pool that acquireAirplane hands out and releaseAirplane
+	 * takes back, so inserting, increasing, extracting and peeking do not create any new objects
+	 * once the heap is warmed up.
+	 * @param capacity is the number of Airplanes this heap is planned to hold.
+	 */
+	public AirplaneHeap(int capacity)
+	{
+		airplanes = new Airplane[capacity];
+		sortedAirplanes = new Airplane[capacity];
+		arraySize = 0;
+		heapSize = 0;
+		sortedSize = 0;
+		pool = new Airplane[capacity];
+		for(int i = 0; i < capacity; i++)
+		{
+			pool[i] = new Airplane("", 0, 0);
+		}
+		poolSize = capacity;
 	}
 	/**
 	 * Gets the size of this Airplane heap.
@@ -43,7 +74,7 @@ public class AirplaneHeap {
 		heapSize = newHeapSize;
 	}
 	/**
-	 * Gets the size of the Array List holding the heap in this Airplane Heap.
+	 * Gets the number of Airplanes stored in this Airplane Heap.
 	 * @return arraySize.
 	 */
 	public int getArraySize()
@@ -51,32 +82,98 @@ public class AirplaneHeap {
 		return arraySize;
 	}
 	/**
-	 * Adds the new Airplane to this Airplane heap.
+	 * Makes sure the array can hold at least the given number of Airplanes.
+	 * When it has to grow, the capacity is doubled, or set to minCapacity if that is bigger.
+	 * @param minCapacity is the number of Airplanes the array must be able to hold.
+	 */
+	public void ensureCapacity(int minCapacity)
+	{
+		if(minCapacity > airplanes.length)
+		{
+			int newCapacity = Math.max(minCapacity, airplanes.length * 2);
+			airplanes = Arrays.copyOf(airplanes, newCapacity);
+			sortedAirplanes = Arrays.copyOf(sortedAirplanes, newCapacity);
+		}
+	}
+	/**
+	 * Adds the new Airplane to this Airplane heap, right after the last Airplane in the heap.
+	 * If there are Airplanes past the heap size, the one in the way is moved to the end instead of
+	 * shifting all of them.
 	 * @param newAirplane to be added into the heap.
 	 */
 	public void addToAirplaneHeap(Airplane newAirplane)
 	{
-		airplanes.add(heapSize, newAirplane);
+		ensureCapacity(arraySize + 1);
+		airplanes[arraySize] = airplanes[heapSize];
+		airplanes[heapSize] = newAirplane;
 		arraySize++;
 		heapSize++;
 	}
 	/**
-	 * Updates the size of the ArrayList based on the existing heap in this Airplane Heap.
+	 * Updates the size of the array based on the existing heap in this Airplane Heap.
+	 * Only the slots past the heap size are emptied, so removing one Airplane takes constant time.
 	 */
 	public void updateArray()
 	{
-		while(airplanes.size() > heapSize)
+		for(int i = heapSize; i < arraySize; i++)
 		{
-			airplanes.remove(heapSize);
+			airplanes[i] = null; // Don't keep the removed Airplanes alive.
 		}
 		arraySize = heapSize; // This makes sure that there are no elements outside the heapSize
-		// This is necessary to maintain the ArrayList. However, sorting the arraylist doesn't call this.
 	}
+	/**
+	 * Gets an Airplane for the given flight, taking one out of the pool when there is one left.
+	 * A pooled Airplane is not handed out again until it is given back with releaseAirplane.
+	 * @param flightNumber of the Airplane.
+	 * @param distance of the Airplane to the runway.
+	 * @param elevation of the Airplane.
+	 * @return an Airplane with its Approach Code calculated.
+	 */
+	public Airplane acquireAirplane(String flightNumber, int distance, int elevation)
+	{
+		if(poolSize == 0)
+		{
+			return new Airplane(flightNumber, distance, elevation);
+		}
+		Airplane airplane = pool[--poolSize];
+		pool[poolSize] = null;
+		airplane.reset(flightNumber, distance, elevation);
+		return airplane;
+	}
+	/**
+	 * Gives an Airplane that is no longer in this Airplane Heap back to the pool.
+	 * Does nothing if this Airplane Heap is not pooled or the pool is already full.
+	 * @param airplane that is no longer used, like the one returned by an extract max.
+	 */
+	public void releaseAirplane(Airplane airplane)
+	{
+		if(pool != null && poolSize < pool.length)
+		{
+			pool[poolSize++] = airplane;
+		}
+	}
+	/**
+	 * Clears this Airplane Heap. A pooled heap gives its Airplanes back to the pool in one copy and
+	 * leaves the old slots as they are, since the pool keeps those Airplanes anyway and nothing past
+	 * the sizes is ever read. A heap that isn't pooled empties its slots so the Airplanes can be
+	 * garbage collected. Either way clearing takes time in proportion to the number of Airplanes.
+	 */
 	public void clearAirplaneHeap()
 	{
-		airplanes.removeAll(airplanes);
+		if(pool != null)
+		{
+			int count = Math.min(arraySize, pool.length - poolSize);
+			System.arraycopy(airplanes, 0, pool, poolSize, count);
+			poolSize += count;
+		}
+		else
+		{
+			Arrays.fill(airplanes, 0, arraySize, null);
+			Arrays.fill(sortedAirplanes, 0, sortedSize, null);
+		}
 		heapSize = 0;
 		arraySize = 0;
+		sortedSize = 0;
 	}
 	/**
 	 * Gets the Approach Code of the Airplane in the given index.
@@ -85,27 +182,93 @@ public class AirplaneHeap {
 	 */
 	public int getAC(int index)
 	{
-		return airplanes.get(index).getApproachCode();
+		return getAirplane(index).getApproachCode();
 	}
 	/**
 	 * Gets the Airplane with the given index.
 	 * @param index of the Airplane that is being fetched in this Airplane Heap.
-	 * @return
+	 * @return the Airplane in the index.
 	 */
 	public Airplane getAirplane(int index)
 	{
-		return airplanes.get(index);
+		if(index < 0 || index >= arraySize)
+		{
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + arraySize);
+		}
+		return airplanes[index];
+	}
+	/**
+	 * Swaps the Airplanes in the two indexes of this Airplane Heap.
+	 * @param index1 of the Airplane to be swapped with the one in index2.
+	 * @param index2 of the Airplane to be swapped with the one in index1.
+	 */
+	public void swap(int index1, int index2)
+	{
+		Airplane temp = airplanes[index1];
+		airplanes[index1] = airplanes[index2];
+		airplanes[index2] = temp;
+	}
+	/**
+	 * Copies the Airplanes of this Airplane Heap into the sorted array so they can be sorted
+	 * without changing the heap.
+	 */
+	public void copyToSorted()
+	{
+		System.arraycopy(airplanes, 0, sortedAirplanes, 0, arraySize);
+		if(sortedSize > arraySize)
+		{
+			Arrays.fill(sortedAirplanes, arraySize, sortedSize, null); // Don't keep removed Airplanes alive.
+		}
+		sortedSize = arraySize;
+	}
+	/**
+	 * Gets the number of Airplanes in the sorted array.
+	 * @return sortedSize.
+	 */
+	public int getSortedSize()
+	{
+		return sortedSize;
 	}
 	/**
-	 * Gets the array list of Airplanes stored in this Airplane Heap.
-	 * @return airplanes
+	 * Gets the Airplane with the given index in the sorted array.
+	 * @param index of the Airplane in the sorted array.
+	 * @return the Airplane in the index.
 	 */
-	public ArrayList<Airplane> getAirplaneList()
+	public Airplane getSortedAirplane(int index)
 	{
-		return airplanes;
+		if(index < 0 || index >= sortedSize)
+		{
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + sortedSize);
+		}
+		return sortedAirplanes[index];
 	}
-		
-	private ArrayList<Airplane> airplanes;
+	/**
+	 * Gets the Approach Code of the Airplane with the given index in the sorted array.
+	 * @param index of the Airplane in the sorted array.
+	 * @return the Approach Code of the Airplane in the index.
+	 */
+	public int getSortedAC(int index)
+	{
+		return getSortedAirplane(index).getApproachCode();
+	}
+	/**
+	 * Swaps the Airplanes in the two indexes of the sorted array.
+	 * @param index1 of the Airplane to be swapped with the one in index2.
+	 * @param index2 of the Airplane to be swapped with the one in index1.
+	 */
+	public void swapSorted(int index1, int index2)
+	{
+		Airplane temp = sortedAirplanes[index1];
+		sortedAirplanes[index1] = sortedAirplanes[index2];
+		sortedAirplanes[index2] = temp;
+	}
+
+	private static final int DEFAULT_CAPACITY = 16;
+	private Airplane[] airplanes;
+	private Airplane[] sortedAirplanes; // Sorted copy of the Airplanes, separate from the heap.
 	private int heapSize;
 	private int arraySize;
+	private int sortedSize;
+	private Airplane[] pool; // Spare Airplanes, only used when this heap is pooled.
+	private int poolSize;
 }
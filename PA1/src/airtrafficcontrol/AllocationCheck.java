@@ -0,0 +1,68 @@
+package airtrafficcontrol;
+
+import java.lang.management.ManagementFactory;
+/**
+ * Checks that a pooled Airplane Heap doesn't allocate anything once it is warmed up.
+ * It runs rounds of inserts, increases, peeks and extracts, first to warm up and then while
+ * counting the bytes this thread allocates. The program exits with 1 if anything was allocated,
+ * so it can be run after every change to the heap.
+ * Usage: AllocationCheck [capacity] [rounds]
+ * @author Jerom Estrada
+ *
+ */
+public class AllocationCheck {
+	/**
+	 * Fills the heap to its capacity, increases the Approach Code of the Airplane in the middle,
+	 * peeks, and extracts every Airplane, giving each one back to the pool.
+	 * @param airplanes is the pooled Airplane Heap.
+	 * @param capacity of the heap.
+	 * @param rounds is the number of times to do this.
+	 */
+	public static void runRounds(AirplaneHeap airplanes, int capacity, int rounds)
+	{
+		for(int round = 0; round < rounds; round++)
+		{
+			for(int i = 0; i < capacity; i++)
+			{
+				int distanceToRunway = (i * 7919 + round) % 17001 + 3000; // [3000...20000]
+				int elevation = (i * 31 + round) % 2001 + 1000; // [1000...3000]
+				AirTrafficControl.maxAirplaneHeapInsert(airplanes,
+						airplanes.acquireAirplane(FLIGHT_NUMBER, distanceToRunway, elevation));
+			}
+			int middle = capacity / 2;
+			AirTrafficControl.AirplaneHeapIncreaseKey(airplanes, middle, airplanes.getAC(middle) + 1);
+			AirTrafficControl.AirplaneHeapMaximum(airplanes);
+			while(airplanes.getAirplaneHeapSize() > 0)
+			{
+				airplanes.releaseAirplane(AirTrafficControl.AirplaneHeapExtractMax(airplanes));
+			}
+		}
+	}
+
+	private static final String FLIGHT_NUMBER = "AA00";
+	private static final int WARM_UP_ROUNDS = 20000;
+
+	// Main program that runs the check.
+	public static void main(String[] args)
+	{
+		int capacity = args.length > 0 ? Integer.parseInt(args[0]) : 128;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		if(!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean))
+		{
+			System.err.println("This JVM can't count allocated bytes");
+			System.exit(2);
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		AirplaneHeap airplanes = new AirplaneHeap(capacity);
+		runRounds(airplanes, capacity, WARM_UP_ROUNDS);
+		long before = threads.getThreadAllocatedBytes(thread);
+		runRounds(airplanes, capacity, rounds);
+		long allocated = threads.getThreadAllocatedBytes(thread) - before;
+		System.out.println(allocated + " bytes allocated in " + rounds + " rounds of " + capacity + " Airplanes");
+		if(allocated != 0)
+		{
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package airtrafficcontrol;
+/**
+ * Models a histogram of latencies in nanoseconds with a fixed number of buckets, so it takes the
+ * same memory no matter how many latencies are recorded.
+ * Latencies below 32 ns get a bucket each. Every power of two above that is split into 32 buckets,
+ * so a percentile is never off by more than about 3% of the latency.
+ * @author Jerom Estrada
+ *
+ */
+public class LatencyHistogram {
+	/**
+	 * Creates an empty histogram.
+	 */
+	public LatencyHistogram()
+	{
+		buckets = new long[BUCKET_COUNT];
+	}
+	/**
+	 * Records one latency. Negative latencies are counted as 0.
+	 * @param nanos is the latency in nanoseconds.
+	 */
+	public void record(long nanos)
+	{
+		long value = Math.max(nanos, 0);
+		buckets[bucketOf(value)]++;
+		count++;
+		max = Math.max(max, value);
+	}
+	/**
+	 * Gets the number of latencies recorded.
+	 * @return count.
+	 */
+	public long getCount()
+	{
+		return count;
+	}
+	/**
+	 * Gets the largest latency recorded, exactly.
+	 * @return max in nanoseconds.
+	 */
+	public long getMax()
+	{
+		return max;
+	}
+	/**
+	 * Gets the given percentile of the recorded latencies, as the highest latency that falls
+	 * in the same bucket. It is never more than the largest latency recorded.
+	 * @param percent of the percentile, from 0 to 100.
+	 * @return the latency at that percentile, or 0 if nothing was recorded.
+	 */
+	public long percentile(double percent)
+	{
+		if(count == 0)
+		{
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percent / 100 * count)); // Rank of the latency, counting from 1.
+		long seen = 0;
+		for(int i = 0; i < BUCKET_COUNT; i++)
+		{
+			seen += buckets[i];
+			if(seen >= rank)
+			{
+				return Math.min(highestIn(i), max);
+			}
+		}
+		return max;
+	}
+	/**
+	 * Gets the bucket a latency goes in.
+	 * @param nanos is the latency, which can't be negative.
+	 * @return the index of the bucket.
+	 */
+	private static int bucketOf(long nanos)
+	{
+		if(nanos < SUB_BUCKETS)
+		{
+			return (int) nanos;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos); // At least SUB_BITS.
+		int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+	/**
+	 * Gets the highest latency that goes in the given bucket.
+	 * @param bucket is the index of the bucket.
+	 * @return the latency in nanoseconds.
+	 */
+	private static long highestIn(int bucket)
+	{
+		if(bucket < SUB_BUCKETS)
+		{
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BITS);
+		return lowest + (1L << (exponent - SUB_BITS)) - 1;
+	}
+
+	private static final int SUB_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	// One row of buckets for the small latencies and one for each power of two up to 2^62.
+	private static final int BUCKET_COUNT = (63 - SUB_BITS + 1) * SUB_BUCKETS;
+	private long[] buckets;
+	private long count;
+	private long max;
+}
@@ -0,0 +1,318 @@
+package airtrafficcontrol;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+/**
+ * Checks replication with several processes on one machine. It starts a SequencerLeader process
+ * that plays the given trace and the given number of SequencerFollower processes, plus a connection
+ * to the leader that stops reading, so the leader has a stalled follower it must drop instead of
+ * waiting for. A burst of inserts and extracts is added to the end of the trace so the stalled
+ * follower falls far enough behind to be dropped, whatever the socket buffers hold.
+ * After the trace is played, one more follower is started to check that a late follower catches
+ * up from the snapshot.
+ * Every follower must reach the leader's last sequence number and answer the same snapshot as
+ * replaying the trace here, and the leader must have closed the stalled connection.
+ * The program exits with 1 if any of that fails.
+ * Usage: ReplicationCheck traceFile [followers] [basePort]
+ * The leader listens on basePort and the followers answer queries on the ports after it.
+ * @author Jerom Estrada
+ *
+ */
+public class ReplicationCheck {
+	/**
+	 * Starts a Java process running the main program of the given class with this program's class path.
+	 * @param className of the class to run.
+	 * @param args for its main program.
+	 * @return the started process.
+	 * @throws IOException if the process can't be started.
+	 */
+	private static Process start(String className, String... args) throws IOException
+	{
+		ArrayList<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(className);
+		for(String arg : args)
+		{
+			command.add(arg);
+		}
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.redirectErrorStream(true);
+		builder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+		return builder.start();
+	}
+	/**
+	 * Sends one query to a follower, retrying the connection until it is answering.
+	 * @param port the follower answers queries on.
+	 * @param query to be sent.
+	 * @return the lines of the answer, without the END line.
+	 * @throws IOException if the follower doesn't answer within the timeout.
+	 */
+	private static ArrayList<String> query(int port, String query) throws IOException, InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while(true)
+		{
+			try
+			{
+				Socket socket = new Socket("localhost", port);
+				try
+				{
+					PrintWriter writer = new PrintWriter(socket.getOutputStream(), true);
+					BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+					writer.println(query);
+					ArrayList<String> lines = new ArrayList<String>();
+					String line;
+					while((line = reader.readLine()) != null && !line.equals("END"))
+					{
+						lines.add(line);
+					}
+					return lines;
+				}
+				finally
+				{
+					socket.close();
+				}
+			}
+			catch(IOException error)
+			{
+				if(System.currentTimeMillis() > deadline)
+				{
+					throw error;
+				}
+				Thread.sleep(POLL_MILLIS);
+			}
+		}
+	}
+	/**
+	 * Waits until the follower has applied every change up to the given sequence number.
+	 * @param port the follower answers queries on.
+	 * @param sequence to wait for.
+	 * @return true if the follower got there while following, false if it timed out.
+	 */
+	private static boolean awaitSequence(int port, long sequence) throws IOException, InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		String wanted = sequence + " LIVE";
+		String status = "";
+		while(System.currentTimeMillis() < deadline)
+		{
+			status = query(port, "STATUS").get(0);
+			if(status.equals(wanted))
+			{
+				return true;
+			}
+			Thread.sleep(POLL_MILLIS);
+		}
+		System.out.println("Follower on port " + port + " is at " + status + ", expected " + wanted);
+		return false;
+	}
+	/**
+	 * Checks that the follower is at the sequence number and has the expected snapshot.
+	 * @param port the follower answers queries on.
+	 * @param sequence the follower should be at.
+	 * @param expected lines of the snapshot.
+	 * @return true if the follower matches.
+	 */
+	private static boolean check(int port, long sequence, ArrayList<String> expected) throws IOException, InterruptedException
+	{
+		if(!awaitSequence(port, sequence))
+		{
+			return false;
+		}
+		ArrayList<String> snapshot = query(port, "SNAPSHOT");
+		if(!snapshot.equals(expected))
+		{
+			System.out.println("Follower on port " + port + " has a different snapshot of " + snapshot.size() + " Airplanes");
+			return false;
+		}
+		System.out.println("Follower on port " + port + " matches at sequence " + sequence);
+		return true;
+	}
+
+	/**
+	 * Writes the given trace into a new trace file followed by a burst of inserts and as many extracts.
+	 * @param trace to be copied.
+	 * @param fileName of the new trace file.
+	 * @throws IOException if the file can't be written.
+	 */
+	private static void writeWithBurst(TrafficTrace trace, String fileName) throws IOException
+	{
+		TraceRecorder recorder = new TraceRecorder(new FileOutputStream(fileName), false);
+		try
+		{
+			for(int i = 0; i < trace.size(); i++)
+			{
+				switch(trace.getOp(i))
+				{
+					case TrafficTrace.INSERT:
+						recorder.recordInsert(trace.getFlightNumber(i), trace.getFirst(i), trace.getSecond(i), trace.getApproachCode(i));
+						break;
+					case TrafficTrace.INCREASE:
+						recorder.recordIncrease(trace.getFirst(i), trace.getSecond(i));
+						break;
+					case TrafficTrace.EXTRACT:
+						recorder.recordExtract();
+						break;
+					case TrafficTrace.CLEAR:
+						recorder.recordClear();
+						break;
+				}
+			}
+			for(int i = 0; i < BURST_SIZE; i++)
+			{
+				recorder.recordInsert(new Airplane("BURST", i % 17001 + 3000, i % 2001 + 1000)); // Same ranges as the GUI.
+			}
+			for(int i = 0; i < BURST_SIZE; i++)
+			{
+				recorder.recordExtract();
+			}
+		}
+		finally
+		{
+			recorder.close();
+		}
+	}
+	/**
+	 * Connects the stalled follower to the leader, retrying until the leader is listening.
+	 * Its receive buffer is kept small so it fills up sooner.
+	 * @param port of the leader.
+	 * @return the connection, which is never read from until checkDropped.
+	 * @throws IOException if the leader isn't listening within the timeout.
+	 */
+	private static Socket connectStalled(int port) throws IOException, InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while(true)
+		{
+			Socket stalled = new Socket();
+			try
+			{
+				stalled.setReceiveBufferSize(4096);
+				stalled.connect(new InetSocketAddress("localhost", port));
+				return stalled;
+			}
+			catch(IOException error)
+			{
+				stalled.close();
+				if(System.currentTimeMillis() > deadline)
+				{
+					throw error;
+				}
+				Thread.sleep(POLL_MILLIS);
+			}
+		}
+	}
+	/**
+	 * Checks that the leader closed the stalled connection, by reading what it had sent until the end.
+	 * @param stalled is the connection that stopped reading.
+	 * @return true if the leader closed it.
+	 */
+	private static boolean checkDropped(Socket stalled)
+	{
+		try
+		{
+			stalled.setSoTimeout((int) TIMEOUT_MILLIS);
+			InputStream in = stalled.getInputStream();
+			byte[] bytes = new byte[8192];
+			while(in.read(bytes) != -1)
+			{
+				// Skip what was sent before the leader closed it.
+			}
+		}
+		catch(SocketTimeoutException error)
+		{
+			System.out.println("The leader didn't drop the stalled follower");
+			return false;
+		}
+		catch(IOException error)
+		{
+			// Reset by the leader, which also means it was dropped.
+		}
+		System.out.println("The leader dropped the stalled follower");
+		return true;
+	}
+
+	// Number of inserts, and then of extracts, added to the end of the trace.
+	private static final int BURST_SIZE = 150000;
+	private static final long TIMEOUT_MILLIS = 30000;
+	private static final long POLL_MILLIS = 50;
+
+	// Main program that runs the check.
+	public static void main(String[] args) throws IOException, InterruptedException
+	{
+		if(args.length < 1)
+		{
+			System.err.println("Usage: ReplicationCheck traceFile [followers] [basePort]");
+			System.exit(1);
+		}
+		int followerCount = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		int basePort = args.length > 2 ? Integer.parseInt(args[2]) : 17400;
+		File burstFile = File.createTempFile("replication", ".trace");
+		burstFile.deleteOnExit();
+		writeWithBurst(TrafficTrace.load(args[0]), burstFile.getPath());
+		// Replay the trace here to know what every follower should end up with.
+		TrafficTrace trace = TrafficTrace.load(burstFile.getPath());
+		TraceReplayer replayer = new TraceReplayer(trace);
+		replayer.replay(1, false);
+		AirplaneHeap airplanes = replayer.getAirplaneHeap();
+		ArrayList<String> expected = new ArrayList<String>();
+		for(int i = 0; i < airplanes.getAirplaneHeapSize(); i++)
+		{
+			expected.add(SequencerFollower.describe(airplanes.getAirplane(i)));
+		}
+		long sequence = trace.size(); // Every change the leader makes gets the next sequence number.
+
+		ArrayList<Process> processes = new ArrayList<Process>();
+		Socket stalled = null;
+		boolean passed = true;
+		try
+		{
+			// The leader waits for the followers and the stalled connection before playing the trace.
+			processes.add(start("airtrafficcontrol.SequencerLeader", String.valueOf(basePort), burstFile.getPath(),
+					"-followers", String.valueOf(followerCount + 1)));
+			stalled = connectStalled(basePort);
+			for(int i = 1; i <= followerCount; i++)
+			{
+				processes.add(start("airtrafficcontrol.SequencerFollower", "localhost",
+						String.valueOf(basePort), String.valueOf(basePort + i)));
+			}
+			for(int i = 1; i <= followerCount; i++)
+			{
+				passed &= check(basePort + i, sequence, expected);
+			}
+			// A late follower gets the snapshot instead of the changes it missed.
+			int latePort = basePort + followerCount + 1;
+			processes.add(start("airtrafficcontrol.SequencerFollower", "localhost",
+					String.valueOf(basePort), String.valueOf(latePort)));
+			passed &= check(latePort, sequence, expected);
+			passed &= checkDropped(stalled);
+		}
+		finally
+		{
+			if(stalled != null)
+			{
+				stalled.close();
+			}
+			for(Process process : processes)
+			{
+				process.destroy();
+			}
+		}
+		System.out.println(passed ? "Replication check passed" : "Replication check FAILED");
+		if(!passed)
+		{
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,410 @@
+package airtrafficcontrol;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+/**
+ * Models a follower of a replicated sequencer. The follower connects to a SequencerLeader, applies
+ * every change the leader sends to its own Airplane Heap, and answers read-only queries about it.
+ * If it loses the leader or is dropped for falling behind, it connects again and starts over
+ * from the snapshot the leader sends.
+ * Usage: SequencerFollower leaderHost leaderPort queryPort
+ * The main program answers queries on the query port, one per line: PEEK, TOP k and SNAPSHOT
+ * answer one line per Airplane, "flightNumber distance elevation approachCode", and STATUS answers
+ * "sequence LIVE" or "sequence STOPPED" with the sequence number of the last change applied.
+ * Every answer ends with a line with END.
+ * @author Jerom Estrada
+ *
+ */
+public class SequencerFollower {
+	/**
+	 * Creates a follower and connects it to the leader on the given host and port.
+	 * @param host of the leader.
+	 * @param port of the leader.
+	 * @throws IOException if the leader can't be reached.
+	 */
+	public SequencerFollower(String host, int port) throws IOException
+	{
+		this.host = host;
+		this.port = port;
+		airplanes = new AirplaneHeap();
+		connect();
+		Thread followThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				follow();
+			}
+		}, "SequencerFollower-follow");
+		followThread.setDaemon(true);
+		followThread.start();
+	}
+	/**
+	 * Connects to the leader and reads the start of its stream. The leader sends a snapshot first,
+	 * so the heap is rebuilt from it.
+	 * @throws IOException if the leader can't be reached.
+	 */
+	private void connect() throws IOException
+	{
+		leader = new Socket(host, port);
+		in = new DataInputStream(new BufferedInputStream(leader.getInputStream()));
+		log = new TrafficTrace();
+		log.readHeader(in);
+	}
+	/**
+	 * Follows the leader until the program is stopped. Whenever the leader is lost, drops this
+	 * follower, or sends a change that can't be applied, the follower is marked as stopped and
+	 * connects again, starting over from a new snapshot.
+	 */
+	private void follow()
+	{
+		while(true)
+		{
+			try
+			{
+				applyChanges();
+				System.err.println("The leader closed the connection");
+			}
+			catch(IOException error)
+			{
+				System.err.println("Lost the leader: " + error.getMessage());
+			}
+			catch(RuntimeException error)
+			{
+				System.err.println("Stopped following after sequence " + getSequence() + ", a change could not be applied: " + error);
+			}
+			synchronized(this)
+			{
+				connected = false; // The heap is kept as it was so it can still be read, but it is no longer live.
+				notifyAll();
+			}
+			try
+			{
+				leader.close();
+			}
+			catch(IOException ignored)
+			{
+				// Already stopped following.
+			}
+			while(true)
+			{
+				try
+				{
+					Thread.sleep(RECONNECT_MILLIS);
+					connect();
+					break;
+				}
+				catch(IOException error)
+				{
+					// The leader isn't back yet, try again.
+				}
+				catch(InterruptedException stopped)
+				{
+					return;
+				}
+			}
+		}
+	}
+	/**
+	 * Reads the changes from the leader and applies them until the leader disconnects.
+	 * A snapshot is read whole before it is applied, so queries never see half of one, and the
+	 * follower only counts as connected once the snapshot is applied.
+	 * @throws IOException if the leader is lost.
+	 */
+	private void applyChanges() throws IOException
+	{
+		while(log.readRecord(in))
+		{
+			if(log.size() == 0)
+			{
+				continue; // The record had an unknown operation code and was skipped.
+			}
+			if(log.getOp(0) == TrafficTrace.SNAPSHOT)
+			{
+				int snapshotSize = log.getFirst(0) + 1;
+				while(log.size() < snapshotSize)
+				{
+					if(!log.readRecord(in))
+					{
+						return; // The leader went away in the middle of the snapshot.
+					}
+				}
+			}
+			synchronized(this)
+			{
+				for(int i = 0; i < log.size(); i++)
+				{
+					log.apply(i, airplanes);
+					sequence = log.getSequence(i);
+				}
+				connected = true;
+				notifyAll();
+			}
+			log.clearOps(); // Only the change that was just read is kept.
+		}
+	}
+	/**
+	 * Gets the Airplane that lands next.
+	 * @return a copy of the Maximum Airplane, or null if the heap is empty.
+	 */
+	public synchronized Airplane peek()
+	{
+		if(airplanes.getAirplaneHeapSize() == 0)
+		{
+			return null;
+		}
+		return new Airplane(AirTrafficControl.AirplaneHeapMaximum(airplanes));
+	}
+	/**
+	 * Gets the next k Airplanes to land, in landing order. Instead of sorting the whole heap, the
+	 * Airplanes are taken from the root down: the next one to land is always the one with the
+	 * highest Approach Code among the children of the ones already taken. Those candidates are kept
+	 * in a small max heap of their indexes, so a query only takes time in proportion to k log k
+	 * and holds up the changes from the leader for no longer than that.
+	 * @param k is the number of Airplanes wanted.
+	 * @return copies of at most k Airplanes with the highest Approach Codes.
+	 */
+	public synchronized Airplane[] topK(int k)
+	{
+		int count = Math.max(0, Math.min(k, airplanes.getAirplaneHeapSize()));
+		Airplane[] top = new Airplane[count];
+		int[] candidates = new int[count + 1]; // Every Airplane taken adds at most two children.
+		int candidateCount = 0;
+		if(count > 0)
+		{
+			candidates[candidateCount++] = 0; // The root lands first.
+		}
+		for(int i = 0; i < count; i++)
+		{
+			int index = candidates[0];
+			top[i] = new Airplane(airplanes.getAirplane(index));
+			candidates[0] = candidates[--candidateCount];
+			siftDownCandidate(candidates, candidateCount, 0);
+			for(int child = AirTrafficControl.left(index); child <= AirTrafficControl.right(index)
+					&& child < airplanes.getAirplaneHeapSize(); child++)
+			{
+				candidates[candidateCount] = child;
+				siftUpCandidate(candidates, candidateCount++);
+			}
+		}
+		return top;
+	}
+	/**
+	 * Moves the candidate in the given position down the candidates' max heap to its proper spot.
+	 * @param candidates are indexes into the Airplane Heap, in max heap form by Approach Code.
+	 * @param size is the number of candidates.
+	 * @param position of the candidate being moved.
+	 */
+	private void siftDownCandidate(int[] candidates, int size, int position)
+	{
+		while(true)
+		{
+			int largest = position;
+			for(int child = AirTrafficControl.left(position); child <= AirTrafficControl.right(position) && child < size; child++)
+			{
+				if(airplanes.getAC(candidates[child]) > airplanes.getAC(candidates[largest]))
+				{
+					largest = child;
+				}
+			}
+			if(largest == position)
+			{
+				return;
+			}
+			int temp = candidates[position];
+			candidates[position] = candidates[largest];
+			candidates[largest] = temp;
+			position = largest;
+		}
+	}
+	/**
+	 * Moves the candidate in the given position up the candidates' max heap to its proper spot.
+	 * @param candidates are indexes into the Airplane Heap, in max heap form by Approach Code.
+	 * @param position of the candidate being moved.
+	 */
+	private void siftUpCandidate(int[] candidates, int position)
+	{
+		while(position > 0 && airplanes.getAC(candidates[AirTrafficControl.parent(position)]) < airplanes.getAC(candidates[position]))
+		{
+			int parent = AirTrafficControl.parent(position);
+			int temp = candidates[position];
+			candidates[position] = candidates[parent];
+			candidates[parent] = temp;
+			position = parent;
+		}
+	}
+	/**
+	 * Gets all the Airplanes in the heap, in heap order.
+	 * @return copies of the Airplanes.
+	 */
+	public synchronized Airplane[] snapshot()
+	{
+		Airplane[] snapshot = new Airplane[airplanes.getAirplaneHeapSize()];
+		for(int i = 0; i < snapshot.length; i++)
+		{
+			snapshot[i] = new Airplane(airplanes.getAirplane(i));
+		}
+		return snapshot;
+	}
+	/**
+	 * Gets the sequence number of the last change applied, which is the same for every follower
+	 * with the same heap and can be compared with SequencerLeader.getSequence.
+	 * @return sequence.
+	 */
+	public synchronized long getSequence()
+	{
+		return sequence;
+	}
+	/**
+	 * Gets the sequence number of the last change applied and whether changes are still coming in.
+	 * @return "sequence LIVE" or "sequence STOPPED".
+	 */
+	public synchronized String getStatus()
+	{
+		return sequence + (connected ? " LIVE" : " STOPPED");
+	}
+	/**
+	 * Checks if the follower is still getting changes from the leader.
+	 * @return true if the leader is connected.
+	 */
+	public synchronized boolean isConnected()
+	{
+		return connected;
+	}
+	/**
+	 * Answers queries on the given port until the program is stopped, with one thread per client.
+	 * @param port that the queries are sent to.
+	 * @throws IOException if the port can't be opened.
+	 */
+	public void serve(int port) throws IOException
+	{
+		ServerSocket serverSocket = new ServerSocket(port);
+		while(true)
+		{
+			final Socket client = serverSocket.accept();
+			Thread clientThread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					answer(client);
+				}
+			}, "SequencerFollower-query");
+			clientThread.setDaemon(true);
+			clientThread.start();
+		}
+	}
+	/**
+	 * Answers the queries of one client until it disconnects.
+	 * @param client that sends the queries.
+	 */
+	private void answer(Socket client)
+	{
+		try
+		{
+			BufferedReader reader = new BufferedReader(new InputStreamReader(client.getInputStream(), "UTF-8"));
+			PrintWriter writer = new PrintWriter(client.getOutputStream(), true);
+			String line;
+			while((line = reader.readLine()) != null)
+			{
+				String[] query = line.trim().split("\\s+");
+				String command = query[0].toUpperCase();
+				if(command.equals("PEEK"))
+				{
+					Airplane max = peek();
+					writeAirplanes(writer, max == null ? new Airplane[0] : new Airplane[] { max });
+				}
+				else if(command.equals("TOP") && query.length == 2)
+				{
+					try
+					{
+						writeAirplanes(writer, topK(Integer.parseInt(query[1])));
+					}
+					catch(NumberFormatException error)
+					{
+						writer.println("ERROR " + query[1] + " is not a number");
+						writer.println("END");
+					}
+				}
+				else if(command.equals("SNAPSHOT"))
+				{
+					writeAirplanes(writer, snapshot());
+				}
+				else if(command.equals("STATUS"))
+				{
+					writer.println(getStatus());
+					writer.println("END");
+				}
+				else
+				{
+					writer.println("ERROR unknown query " + line);
+					writer.println("END");
+				}
+			}
+		}
+		catch(IOException error)
+		{
+			// The client went away, nothing to answer anymore.
+		}
+		finally
+		{
+			try
+			{
+				client.close();
+			}
+			catch(IOException ignored)
+			{
+				// Already closing.
+			}
+		}
+	}
+	/**
+	 * Writes one line per Airplane followed by END.
+	 * @param writer to the client.
+	 * @param airplanes to be written.
+	 */
+	private static void writeAirplanes(PrintWriter writer, Airplane[] airplanes)
+	{
+		for(Airplane airplane : airplanes)
+		{
+			writer.println(describe(airplane));
+		}
+		writer.println("END");
+	}
+	/**
+	 * Describes the Airplane the way the queries answer it.
+	 * @param airplane to be described.
+	 * @return "flightNumber distance elevation approachCode".
+	 */
+	static String describe(Airplane airplane)
+	{
+		return airplane.getFlightNumber() + " " + airplane.getDistance() + " "
+				+ airplane.getElevation() + " " + airplane.getApproachCode();
+	}
+
+	// How long to wait before connecting to the leader again.
+	private static final long RECONNECT_MILLIS = 500;
+	private String host;
+	private int port;
+	private AirplaneHeap airplanes;
+	private TrafficTrace log; // Holds the change that was just read from the leader.
+	private Socket leader;
+	private DataInputStream in;
+	private long sequence; // Sequence number of the last change applied.
+	private boolean connected;
+
+	// Main program that follows a leader and answers queries.
+	public static void main(String[] args) throws IOException
+	{
+		if(args.length < 3)
+		{
+			System.err.println("Usage: SequencerFollower leaderHost leaderPort queryPort");
+			System.exit(1);
+		}
+		SequencerFollower follower = new SequencerFollower(args[0], Integer.parseInt(args[1]));
+		System.out.println("Following " + args[0] + ":" + args[1] + ", answering queries on port " + args[2]);
+		follower.serve(Integer.parseInt(args[2]));
+	}
+}
@@ -0,0 +1,441 @@
+package airtrafficcontrol;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.concurrent.locks.LockSupport;
+/**
+ * Models the leader of a replicated sequencer. The leader holds the Airplane Heap that all the
+ * changes are made to, and streams every change to its followers over sockets in the same format
+ * TraceRecorder writes to trace files. Every change gets the next sequence number.
+ * While the leader is locked, a change is only copied into a ring of the last changes made, whose
+ * slots are created up front, so changing the heap doesn't create any objects. Each follower has
+ * its own thread that copies the changes it hasn't sent yet out of the ring and writes them to the
+ * socket without the lock, so a slow follower can't hold up the leader. A follower that falls so
+ * far behind that its next change would be overwritten is dropped. Every follower is first sent,
+ * from its own thread, a snapshot of the heap as inserts in heap order, which gives it exactly
+ * the same heap.
+ * Usage: SequencerLeader port traceFile [-paced] [-followers count]
+ * The main program plays the given trace through the leader, after waiting for the given number of
+ * followers, and keeps running so more followers can connect. The GUI doesn't run as a leader;
+ * its changes can be recorded with -record and then played through the leader.
+ * @author Jerom Estrada
+ *
+ */
+public class SequencerLeader {
+	/**
+	 * Creates a leader with a pooled Airplane Heap and starts accepting followers on the given port.
+	 * @param capacity is the number of Airplanes the heap is planned to hold.
+	 * @param port that the followers connect to.
+	 * @throws IOException if the port can't be opened.
+	 */
+	public SequencerLeader(int capacity, int port) throws IOException
+	{
+		airplanes = new AirplaneHeap(capacity);
+		followers = new ArrayList<Follower>();
+		changes = new Change[BACKLOG_CAPACITY];
+		for(int i = 0; i < changes.length; i++)
+		{
+			changes[i] = new Change();
+		}
+		serverSocket = new ServerSocket(port);
+		Thread acceptThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				acceptFollowers();
+			}
+		}, "SequencerLeader-accept");
+		acceptThread.start();
+	}
+	/**
+	 * Inserts a new Airplane into the leader's heap and sends the insert to the followers.
+	 * @param flightNumber of the new Airplane.
+	 * @param distance of the new Airplane to the runway.
+	 * @param elevation of the new Airplane.
+	 * @param approachCode of the new Airplane.
+	 * @throws IllegalArgumentException if the flight number is longer than Airplane.MAX_FLIGHT_NUMBER_LENGTH.
+	 */
+	public synchronized void insert(String flightNumber, int distance, int elevation, int approachCode)
+	{
+		if(flightNumber.length() > Airplane.MAX_FLIGHT_NUMBER_LENGTH)
+		{
+			throw new IllegalArgumentException("Flight number of " + flightNumber.length() + " characters is longer than "
+					+ Airplane.MAX_FLIGHT_NUMBER_LENGTH);
+		}
+		Airplane airplane = airplanes.acquireAirplane(flightNumber, distance, elevation);
+		airplane.setApproachCode(approachCode);
+		AirTrafficControl.maxAirplaneHeapInsert(airplanes, airplane);
+		Change change = nextChange(TrafficTrace.INSERT);
+		if(change != null)
+		{
+			change.flightNumber = flightNumber;
+			change.first = distance;
+			change.second = elevation;
+			change.approachCode = approachCode;
+		}
+	}
+	/**
+	 * Increases the Approach Code of the Airplane in the given index of the leader's heap
+	 * and sends the increase to the followers.
+	 * @param index of the Airplane in the heap.
+	 * @param newAC for the Airplane.
+	 * @throws RuntimeException if the new Approach Code is smaller than the current one,
+	 * in which case nothing is sent.
+	 */
+	public synchronized void increaseKey(int index, int newAC)
+	{
+		AirTrafficControl.AirplaneHeapIncreaseKey(airplanes, index, newAC);
+		Change change = nextChange(TrafficTrace.INCREASE);
+		if(change != null)
+		{
+			change.first = index;
+			change.second = newAC;
+		}
+	}
+	/**
+	 * Extracts the Maximum Airplane from the leader's heap and sends the extract to the followers.
+	 * The extracted Airplane goes back to the pool, so only its fields are handed out.
+	 * @param landed is set to the fields of the extracted Airplane, or null if they aren't needed.
+	 */
+	public synchronized void extractMax(Airplane landed)
+	{
+		Airplane extracted = AirTrafficControl.AirplaneHeapExtractMax(airplanes);
+		if(landed != null)
+		{
+			landed.reset(extracted.getFlightNumber(), extracted.getDistance(), extracted.getElevation());
+			landed.setApproachCode(extracted.getApproachCode());
+		}
+		airplanes.releaseAirplane(extracted);
+		nextChange(TrafficTrace.EXTRACT);
+	}
+	/**
+	 * Clears the leader's heap and sends the clear to the followers.
+	 */
+	public synchronized void clear()
+	{
+		airplanes.clearAirplaneHeap();
+		nextChange(TrafficTrace.CLEAR);
+	}
+	/**
+	 * Gets the sequence number of the last change made to the leader's heap.
+	 * @return sequence.
+	 */
+	public synchronized long getSequence()
+	{
+		return sequence;
+	}
+	/**
+	 * Gets the number of followers that are connected.
+	 * @return the number of followers.
+	 */
+	public synchronized int getFollowerCount()
+	{
+		return followers.size();
+	}
+	/**
+	 * Waits until the given number of followers are connected.
+	 * @param count is the number of followers to wait for.
+	 * @throws InterruptedException if the waiting thread is interrupted.
+	 */
+	public synchronized void awaitFollowers(int count) throws InterruptedException
+	{
+		while(followers.size() < count)
+		{
+			wait();
+		}
+	}
+	/**
+	 * Stops accepting followers and disconnects the ones that are connected.
+	 * @throws IOException if the server socket can't be closed.
+	 */
+	public synchronized void close() throws IOException
+	{
+		serverSocket.close();
+		while(!followers.isEmpty())
+		{
+			dropFollower(followers.get(0), null);
+		}
+	}
+	/**
+	 * Gives the next sequence number to a change and, if there are followers, gets the slot of the
+	 * ring the change goes in. Followers whose next change is in that slot are dropped first.
+	 * Must be called while the leader is locked, right after the change is made.
+	 * @param op is the operation code from TrafficTrace.
+	 * @return the slot with its operation code set, for the caller to fill in the fields, or null
+	 * if there are no followers to send the change to.
+	 */
+	private Change nextChange(byte op)
+	{
+		sequence++;
+		if(followers.isEmpty())
+		{
+			return null;
+		}
+		for(int i = followers.size()-1; i >= 0; i--)
+		{
+			Follower follower = followers.get(i);
+			if(follower.next <= sequence - BACKLOG_CAPACITY)
+			{
+				dropFollower(follower, "it fell " + BACKLOG_CAPACITY + " changes behind");
+			}
+		}
+		notifyAll(); // Wakes the follower threads waiting for a change.
+		Change change = changes[(int) (sequence % BACKLOG_CAPACITY)];
+		change.op = op;
+		change.flightNumber = null;
+		return change;
+	}
+	/**
+	 * Waits until there are changes the follower hasn't been sent, then copies as many of them as
+	 * fit out of the ring into the follower's batch.
+	 * @param follower whose changes are taken.
+	 * @return the number of changes copied into the batch.
+	 * @throws InterruptedException if the follower was dropped.
+	 */
+	private synchronized int takeChanges(Follower follower) throws InterruptedException
+	{
+		while(follower.next > sequence)
+		{
+			if(follower.dropped)
+			{
+				throw new InterruptedException();
+			}
+			wait();
+		}
+		if(follower.dropped)
+		{
+			throw new InterruptedException();
+		}
+		int count = (int) Math.min(sequence - follower.next + 1, follower.batch.length);
+		for(int i = 0; i < count; i++)
+		{
+			follower.batch[i].copy(changes[(int) ((follower.next + i) % BACKLOG_CAPACITY)]);
+		}
+		follower.next += count;
+		return count;
+	}
+	/**
+	 * Accepts followers until the server socket is closed. Only a copy of the heap is taken while
+	 * the leader is locked; the follower's own thread sends it.
+	 */
+	private void acceptFollowers()
+	{
+		while(!serverSocket.isClosed())
+		{
+			try
+			{
+				Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true); // Every change is sent right away.
+				Follower follower;
+				synchronized(this)
+				{
+					Airplane[] snapshot = new Airplane[airplanes.getAirplaneHeapSize()];
+					for(int i = 0; i < snapshot.length; i++)
+					{
+						snapshot[i] = new Airplane(airplanes.getAirplane(i));
+					}
+					follower = new Follower(socket, snapshot, sequence);
+					followers.add(follower);
+					notifyAll();
+				}
+				follower.thread.start();
+			}
+			catch(IOException error)
+			{
+				if(!serverSocket.isClosed())
+				{
+					System.err.println("Could not accept a follower: " + error.getMessage());
+				}
+			}
+		}
+	}
+	/**
+	 * Disconnects the follower and stops its thread. Does nothing if it was already dropped.
+	 * @param follower to be dropped.
+	 * @param reason it is dropped, or null if the leader is closing.
+	 */
+	private synchronized void dropFollower(Follower follower, String reason)
+	{
+		if(!followers.remove(follower))
+		{
+			return;
+		}
+		follower.dropped = true;
+		if(reason != null)
+		{
+			System.err.println("Dropped a follower: " + reason);
+		}
+		follower.thread.interrupt();
+		try
+		{
+			follower.socket.close();
+		}
+		catch(IOException ignored)
+		{
+			// Nothing else to do with a broken socket.
+		}
+	}
+	/**
+	 * Models a slot for a change made to the leader's heap. The slots are reused, so they only hold
+	 * the fields of the change and never an Airplane from the heap.
+	 */
+	private static final class Change
+	{
+		/**
+		 * Copies the fields of the other change into this one.
+		 * @param other is the change being copied.
+		 */
+		void copy(Change other)
+		{
+			op = other.op;
+			flightNumber = other.flightNumber;
+			first = other.first;
+			second = other.second;
+			approachCode = other.approachCode;
+		}
+
+		byte op;
+		String flightNumber; // Only used by INSERT.
+		int first; // Distance of an INSERT, or the heap index of an INCREASE.
+		int second; // Elevation of an INSERT, or the new Approach Code of an INCREASE.
+		int approachCode; // Only used by INSERT.
+	}
+	/**
+	 * Models a connected follower with the sequence number of the next change its thread sends to it.
+	 */
+	private final class Follower implements Runnable
+	{
+		Follower(Socket socket, Airplane[] snapshot, long snapshotSequence)
+		{
+			this.socket = socket;
+			this.snapshot = snapshot;
+			next = snapshotSequence + 1;
+			batch = new Change[BATCH_SIZE];
+			for(int i = 0; i < batch.length; i++)
+			{
+				batch[i] = new Change();
+			}
+			thread = new Thread(this, "SequencerLeader-follower");
+			thread.setDaemon(true);
+		}
+		/**
+		 * Sends the snapshot, then the changes made after it, a batch at a time.
+		 */
+		@Override
+		public void run()
+		{
+			try
+			{
+				TraceRecorder recorder = new TraceRecorder(socket.getOutputStream(), false);
+				recorder.recordSnapshot(snapshot, next - 1);
+				recorder.flush(); // The follower needs the snapshot even if no change comes after it.
+				snapshot = null;
+				while(true)
+				{
+					int count = takeChanges(this);
+					for(int i = 0; i < count; i++)
+					{
+						Change change = batch[i];
+						switch(change.op)
+						{
+							case TrafficTrace.INSERT:
+								recorder.recordInsert(change.flightNumber, change.first, change.second, change.approachCode);
+								break;
+							case TrafficTrace.INCREASE:
+								recorder.recordIncrease(change.first, change.second);
+								break;
+							case TrafficTrace.EXTRACT:
+								recorder.recordExtract();
+								break;
+							case TrafficTrace.CLEAR:
+								recorder.recordClear();
+								break;
+						}
+					}
+					recorder.flush();
+				}
+			}
+			catch(IOException error)
+			{
+				dropFollower(this, error.getMessage());
+			}
+			catch(InterruptedException stopped)
+			{
+				// The follower was dropped.
+			}
+		}
+
+		final Socket socket;
+		final Thread thread;
+		final Change[] batch; // Changes copied out of the ring, being written without the lock.
+		long next; // Sequence number of the next change to send, only used while the leader is locked.
+		boolean dropped; // Only used while the leader is locked.
+		private Airplane[] snapshot; // Heap as it was when the follower connected, until it is sent.
+	}
+
+	// Number of changes kept in the ring, which is how far behind a follower can be before it is dropped.
+	private static final int BACKLOG_CAPACITY = 4096;
+	// Number of changes a follower's thread copies out of the ring at once.
+	private static final int BATCH_SIZE = 256;
+	private AirplaneHeap airplanes;
+	private ArrayList<Follower> followers;
+	private Change[] changes; // Ring of the last changes, the change with sequence s is in slot s % BACKLOG_CAPACITY.
+	private ServerSocket serverSocket;
+	private long sequence; // Sequence number of the last change.
+
+	// Main program that plays a trace through the leader.
+	public static void main(String[] args) throws IOException, InterruptedException
+	{
+		if(args.length < 2)
+		{
+			System.err.println("Usage: SequencerLeader port traceFile [-paced] [-followers count]");
+			System.exit(1);
+		}
+		boolean paced = false;
+		int followerCount = 0;
+		for(int i = 2; i < args.length; i++)
+		{
+			if(args[i].equals("-paced"))
+			{
+				paced = true;
+			}
+			else if(args[i].equals("-followers") && i+1 < args.length)
+			{
+				followerCount = Integer.parseInt(args[++i]);
+			}
+		}
+		TrafficTrace trace = TrafficTrace.load(args[1]);
+		SequencerLeader leader = new SequencerLeader(Math.max(trace.getPeakSize(), 1), Integer.parseInt(args[0]));
+		System.out.println("Leader listening on port " + args[0]);
+		leader.awaitFollowers(followerCount);
+		long start = System.nanoTime();
+		for(int i = 0; i < trace.size(); i++)
+		{
+			if(paced)
+			{
+				long wait = start + trace.getTime(i) - System.nanoTime();
+				if(wait > 0)
+				{
+					LockSupport.parkNanos(wait);
+				}
+			}
+			switch(trace.getOp(i))
+			{
+				case TrafficTrace.INSERT:
+					leader.insert(trace.getFlightNumber(i), trace.getFirst(i), trace.getSecond(i), trace.getApproachCode(i));
+					break;
+				case TrafficTrace.INCREASE:
+					leader.increaseKey(trace.getFirst(i), trace.getSecond(i));
+					break;
+				case TrafficTrace.EXTRACT:
+					leader.extractMax(null);
+					break;
+				case TrafficTrace.CLEAR:
+					leader.clear();
+					break;
+			}
+		}
+		System.out.println("Leader at sequence " + leader.getSequence() + " with " + leader.getFollowerCount() + " followers");
+	}
+}
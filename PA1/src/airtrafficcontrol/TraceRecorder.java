@@ -0,0 +1,215 @@
+package airtrafficcontrol;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+/**
+ * Records the changes made to an Airplane Heap into a binary trace that TraceReplayer can play back
+ * and that SequencerLeader streams to its followers.
+ * The file starts with the magic number and version from TrafficTrace, followed by one record per change.
+ * Each record is its length as an unsigned short, then the operation code, the nanoseconds since
+ * the previous record, the sequence number of the change and the fields of the operation.
+ * Every change gets the next sequence number, so a reader can tell how far along the trace it is.
+ * @author Jerom Estrada
+ *
+ */
+public class TraceRecorder {
+	/**
+	 * Creates a recorder that writes a new trace into the given file.
+	 * @param fileName of the trace file, which is overwritten if it exists.
+	 * @throws IOException if the file can't be opened or written.
+	 */
+	public TraceRecorder(String fileName) throws IOException
+	{
+		this(new FileOutputStream(fileName), true);
+	}
+	/**
+	 * Creates a recorder that writes a new trace into the given stream, like a socket to a follower.
+	 * @param stream the trace is written into.
+	 * @param flushEachRecord is true if every record should be flushed as soon as it is written,
+	 * otherwise records are only sent when the buffer fills up or flush is called.
+	 * @throws IOException if the stream can't be written.
+	 */
+	public TraceRecorder(OutputStream stream, boolean flushEachRecord) throws IOException
+	{
+		this.flushEachRecord = flushEachRecord;
+		out = new DataOutputStream(new BufferedOutputStream(stream));
+		out.writeInt(TrafficTrace.MAGIC);
+		out.writeShort(TrafficTrace.VERSION);
+		out.flush();
+		buffer = new ByteArrayOutputStream();
+		record = new DataOutputStream(buffer);
+		lastTime = System.nanoTime();
+	}
+	/**
+	 * Records an Airplane being inserted into the heap.
+	 * @param airplane that was inserted.
+	 * @throws IOException if the record can't be written.
+	 */
+	public void recordInsert(Airplane airplane) throws IOException
+	{
+		recordInsert(airplane.getFlightNumber(), airplane.getDistance(), airplane.getElevation(), airplane.getApproachCode());
+	}
+	/**
+	 * Records an Airplane with the given fields being inserted into the heap.
+	 * @param flightNumber of the inserted Airplane.
+	 * @param distance of the inserted Airplane to the runway.
+	 * @param elevation of the inserted Airplane.
+	 * @param approachCode of the inserted Airplane.
+	 * @throws IOException if the record can't be written.
+	 */
+	public void recordInsert(String flightNumber, int distance, int elevation, int approachCode) throws IOException
+	{
+		startRecord(TrafficTrace.INSERT, ++sequence);
+		writeInsert(flightNumber, distance, elevation, approachCode);
+		endRecord();
+	}
+	/**
+	 * Writes the fields of an inserted Airplane into the record being written.
+	 * @param flightNumber of the inserted Airplane.
+	 * @param distance of the inserted Airplane to the runway.
+	 * @param elevation of the inserted Airplane.
+	 * @param approachCode of the inserted Airplane.
+	 * @throws IOException if the record can't be written.
+	 */
+	private void writeInsert(String flightNumber, int distance, int elevation, int approachCode) throws IOException
+	{
+		record.writeUTF(flightNumber);
+		record.writeInt(distance);
+		record.writeInt(elevation);
+		record.writeInt(approachCode);
+	}
+	/**
+	 * Records the Approach Code of the Airplane in the given index of the heap being increased.
+	 * @param index of the Airplane in the heap.
+	 * @param newAC that was assigned to the Airplane.
+	 * @throws IOException if the record can't be written.
+	 */
+	public void recordIncrease(int index, int newAC) throws IOException
+	{
+		startRecord(TrafficTrace.INCREASE, ++sequence);
+		record.writeInt(index);
+		record.writeInt(newAC);
+		endRecord();
+	}
+	/**
+	 * Records the Maximum Airplane being extracted from the heap.
+	 * @throws IOException if the record can't be written.
+	 */
+	public void recordExtract() throws IOException
+	{
+		startRecord(TrafficTrace.EXTRACT, ++sequence);
+		endRecord();
+	}
+	/**
+	 * Records the heap being cleared.
+	 * @throws IOException if the record can't be written.
+	 */
+	public void recordClear() throws IOException
+	{
+		startRecord(TrafficTrace.CLEAR, ++sequence);
+		endRecord();
+	}
+	/**
+	 * Records every Airplane in a max heap as an insert, in heap order. Inserting them in that order
+	 * into an empty heap gives back exactly the same heap, so a replay lines up with the recorded indexes.
+	 * @param airplanes is the Airplane Heap, which must be in max heap form.
+	 * @throws IOException if the records can't be written.
+	 */
+	public void recordHeap(AirplaneHeap airplanes) throws IOException
+	{
+		for(int i = 0; i < airplanes.getAirplaneHeapSize(); i++)
+		{
+			recordInsert(airplanes.getAirplane(i));
+		}
+	}
+	/**
+	 * Records a snapshot of a heap: a SNAPSHOT record with the number of Airplanes, followed by the
+	 * Airplanes as inserts in heap order. All of them have the same sequence number, since together
+	 * they are the heap as it was after that change. Later records continue from it.
+	 * A reader can apply the whole snapshot at once because it knows how many inserts follow.
+	 * @param airplanes of the heap in heap order.
+	 * @param atSequence is the sequence number of the last change made to the heap.
+	 * @throws IOException if the records can't be written.
+	 */
+	public void recordSnapshot(Airplane[] airplanes, long atSequence) throws IOException
+	{
+		sequence = atSequence;
+		startRecord(TrafficTrace.SNAPSHOT, sequence);
+		record.writeInt(airplanes.length);
+		endRecord();
+		for(Airplane airplane : airplanes)
+		{
+			startRecord(TrafficTrace.INSERT, sequence);
+			writeInsert(airplane.getFlightNumber(), airplane.getDistance(), airplane.getElevation(), airplane.getApproachCode());
+			endRecord();
+		}
+	}
+	/**
+	 * Gets the sequence number of the last record written.
+	 * @return sequence.
+	 */
+	public long getSequence()
+	{
+		return sequence;
+	}
+	/**
+	 * Sends the records that are still in the buffer.
+	 * @throws IOException if they can't be written.
+	 */
+	public void flush() throws IOException
+	{
+		out.flush();
+	}
+	/**
+	 * Closes the trace file.
+	 * @throws IOException if the file can't be closed.
+	 */
+	public void close() throws IOException
+	{
+		out.close();
+	}
+	/**
+	 * Starts a new record with the given operation code, the time since the last record and the sequence number.
+	 * @param op is the operation code from TrafficTrace.
+	 * @param recordSequence is the sequence number written into the record.
+	 * @throws IOException if the record can't be written.
+	 */
+	private void startRecord(byte op, long recordSequence) throws IOException
+	{
+		long now = System.nanoTime();
+		buffer.reset();
+		record.writeByte(op);
+		record.writeLong(now - lastTime);
+		record.writeLong(recordSequence);
+		lastTime = now;
+	}
+	/**
+	 * Writes the finished record into the file with its length in front of it.
+	 * A trace file is flushed every time so the trace is complete even if the program is closed.
+	 * @throws IOException if the record can't be written or is too long for its length to fit.
+	 */
+	private void endRecord() throws IOException
+	{
+		if(buffer.size() > 0xFFFF)
+		{
+			throw new IOException("Record of " + buffer.size() + " bytes is longer than " + 0xFFFF + " bytes");
+		}
+		out.writeShort(buffer.size());
+		buffer.writeTo(out);
+		if(flushEachRecord)
+		{
+			out.flush();
+		}
+	}
+
+	private DataOutputStream out;
+	private ByteArrayOutputStream buffer; // Holds the record being written so its length is known.
+	private DataOutputStream record;
+	private long lastTime;
+	private long sequence; // Sequence number of the last record written.
+	private boolean flushEachRecord;
+}
@@ -0,0 +1,126 @@
+package airtrafficcontrol;
+
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+/**
+ * Replays a traffic trace recorded by TraceRecorder through an Airplane Heap without the GUI,
+ * and reports the throughput and the latency percentiles of each kind of operation.
+ * The latencies are kept in a LatencyHistogram per operation, so replaying takes the same memory
+ * however many times the trace is repeated.
+ * Usage: TraceReplayer traceFile [-paced] [-repeat times]
+ * By default the trace is played as fast as possible. With -paced, each operation waits
+ * until its recorded time.
+ * @author Jerom Estrada
+ *
+ */
+public class TraceReplayer {
+	/**
+	 * Creates a replayer for the given trace.
+	 * @param trace to be replayed.
+	 */
+	public TraceReplayer(TrafficTrace trace)
+	{
+		this.trace = trace;
+		airplanes = new AirplaneHeap(Math.max(trace.getPeakSize(), 1));
+	}
+	/**
+	 * Replays the trace the given number of times, clearing the heap before every pass.
+	 * @param repeat is the number of passes over the trace.
+	 * @param paced is true if each operation should wait until its recorded time.
+	 */
+	public void replay(int repeat, boolean paced)
+	{
+		latencies = new LatencyHistogram[OP_NAMES.length];
+		for(int op = 0; op < OP_NAMES.length; op++)
+		{
+			latencies[op] = new LatencyHistogram();
+		}
+		long start = System.nanoTime();
+		for(int pass = 0; pass < repeat; pass++)
+		{
+			airplanes.clearAirplaneHeap();
+			long passStart = System.nanoTime();
+			for(int i = 0; i < trace.size(); i++)
+			{
+				if(paced)
+				{
+					long wait = passStart + trace.getTime(i) - System.nanoTime();
+					if(wait > 0)
+					{
+						LockSupport.parkNanos(wait);
+					}
+				}
+				byte op = trace.getOp(i);
+				long before = System.nanoTime();
+				trace.apply(i, airplanes);
+				latencies[op].record(System.nanoTime() - before);
+			}
+		}
+		elapsed = System.nanoTime() - start;
+	}
+	/**
+	 * Prints the throughput and the latency percentiles of the last replay.
+	 */
+	public void printReport()
+	{
+		long total = 0;
+		for(LatencyHistogram histogram : latencies)
+		{
+			total += histogram.getCount();
+		}
+		System.out.printf("%d operations in %.3f ms, %.0f ops/sec%n", total, elapsed / 1e6, total / (elapsed / 1e9));
+		System.out.printf("%-9s %10s %10s %10s %10s %10s %10s%n", "op", "count", "p50 ns", "p90 ns", "p99 ns", "p99.9 ns", "max ns");
+		for(int op = 1; op < OP_NAMES.length; op++)
+		{
+			LatencyHistogram histogram = latencies[op];
+			if(histogram.getCount() == 0)
+			{
+				continue;
+			}
+			System.out.printf("%-9s %10d %10d %10d %10d %10d %10d%n", OP_NAMES[op], histogram.getCount(),
+					histogram.percentile(50), histogram.percentile(90), histogram.percentile(99),
+					histogram.percentile(99.9), histogram.getMax());
+		}
+	}
+	/**
+	 * Gets the Airplane Heap the trace is replayed into.
+	 * @return airplanes.
+	 */
+	public AirplaneHeap getAirplaneHeap()
+	{
+		return airplanes;
+	}
+
+	// Names of the operations, indexed by their operation codes in TrafficTrace.
+	private static final String[] OP_NAMES = { "", "insert", "increase", "extract", "clear", "snapshot" };
+	private TrafficTrace trace;
+	private AirplaneHeap airplanes;
+	private LatencyHistogram[] latencies; // Latencies of each operation, indexed by operation code.
+	private long elapsed;
+
+	// Main program that replays the trace file given in the arguments.
+	public static void main(String[] args) throws IOException
+	{
+		if(args.length < 1)
+		{
+			System.err.println("Usage: TraceReplayer traceFile [-paced] [-repeat times]");
+			System.exit(1);
+		}
+		boolean paced = false;
+		int repeat = 1;
+		for(int i = 1; i < args.length; i++)
+		{
+			if(args[i].equals("-paced"))
+			{
+				paced = true;
+			}
+			else if(args[i].equals("-repeat") && i+1 < args.length)
+			{
+				repeat = Integer.parseInt(args[++i]);
+			}
+		}
+		TraceReplayer replayer = new TraceReplayer(TrafficTrace.load(args[0]));
+		replayer.replay(repeat, paced);
+		replayer.printReport();
+	}
+}
@@ -0,0 +1,288 @@
+package airtrafficcontrol;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+/**
+ * Models a traffic trace recorded by TraceRecorder, loaded fully into memory so that it can be
+ * replayed without reading the file again.
+ * @author Jerom Estrada
+ *
+ */
+public class TrafficTrace {
+	/**
+	 * Loads the trace in the given file. Records with an unknown operation code are skipped.
+	 * @param fileName of the trace file.
+	 * @return the loaded trace.
+	 * @throws IOException if the file can't be read or isn't a trace file.
+	 */
+	public static TrafficTrace load(String fileName) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)));
+		try
+		{
+			TrafficTrace trace = new TrafficTrace();
+			trace.readHeader(in);
+			while(trace.readRecord(in))
+			{
+				// Keep reading until there are no more records.
+			}
+			return trace;
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+	/**
+	 * Reads the magic number and version at the start of a trace.
+	 * @param in is the stream the trace is read from.
+	 * @throws IOException if it can't be read or isn't a trace.
+	 */
+	public void readHeader(DataInputStream in) throws IOException
+	{
+		if(in.readInt() != MAGIC)
+		{
+			throw new IOException("Not a traffic trace");
+		}
+		short version = in.readShort();
+		if(version != VERSION)
+		{
+			throw new IOException("Unsupported traffic trace version " + version);
+		}
+	}
+	/**
+	 * Reads the next record of a trace and adds it to the end of this trace.
+	 * Records with an unknown operation code are skipped.
+	 * @param in is the stream the trace is read from, after its header.
+	 * @return false if the stream has ended, true otherwise.
+	 * @throws IOException if the record can't be read.
+	 */
+	public boolean readRecord(DataInputStream in) throws IOException
+	{
+		int length;
+		try
+		{
+			length = in.readUnsignedShort();
+		}
+		catch(EOFException end)
+		{
+			return false; // No more records.
+		}
+		if(bytes == null)
+		{
+			bytes = new byte[0xFFFF];
+		}
+		in.readFully(bytes, 0, length);
+		DataInputStream record = new DataInputStream(new ByteArrayInputStream(bytes, 0, length));
+		byte op = record.readByte();
+		time += record.readLong();
+		sequence = record.readLong();
+		if(op == INSERT)
+		{
+			add(op, time, sequence, record.readUTF(), record.readInt(), record.readInt(), record.readInt());
+		}
+		else if(op == INCREASE)
+		{
+			add(op, time, sequence, null, record.readInt(), record.readInt(), 0);
+		}
+		else if(op == SNAPSHOT)
+		{
+			add(op, time, sequence, null, record.readInt(), 0, 0);
+		}
+		else if(op == EXTRACT || op == CLEAR)
+		{
+			add(op, time, sequence, null, 0, 0, 0);
+		}
+		return true;
+	}
+	/**
+	 * Applies the operation in the given index of this trace to the Airplane Heap.
+	 * @param index of the operation.
+	 * @param airplanes is the Airplane Heap the operation is applied to.
+	 */
+	public void apply(int index, AirplaneHeap airplanes)
+	{
+		switch(ops[index])
+		{
+			case INSERT:
+				Airplane airplane = airplanes.acquireAirplane(flightNumbers[index], first[index], second[index]);
+				airplane.setApproachCode(approachCodes[index]); // It might have been increased before it was recorded.
+				AirTrafficControl.maxAirplaneHeapInsert(airplanes, airplane);
+				break;
+			case INCREASE:
+				AirTrafficControl.AirplaneHeapIncreaseKey(airplanes, first[index], second[index]);
+				break;
+			case EXTRACT:
+				airplanes.releaseAirplane(AirTrafficControl.AirplaneHeapExtractMax(airplanes));
+				break;
+			case CLEAR:
+			case SNAPSHOT: // The inserts of the snapshot follow it.
+				airplanes.clearAirplaneHeap();
+				break;
+		}
+	}
+	/**
+	 * Removes the operations in this trace, keeping its arrays to be reused.
+	 */
+	public void clearOps()
+	{
+		for(int i = 0; i < size; i++)
+		{
+			flightNumbers[i] = null;
+		}
+		size = 0;
+	}
+	/**
+	 * Gets the number of operations in this trace.
+	 * @return size.
+	 */
+	public int size()
+	{
+		return size;
+	}
+	/**
+	 * Gets the operation code of the operation in the given index.
+	 * @param index of the operation.
+	 * @return INSERT, INCREASE, EXTRACT, CLEAR or SNAPSHOT.
+	 */
+	public byte getOp(int index)
+	{
+		return ops[index];
+	}
+	/**
+	 * Gets the time of the operation in the given index, in nanoseconds since the trace started.
+	 * @param index of the operation.
+	 * @return the recorded time.
+	 */
+	public long getTime(int index)
+	{
+		return times[index];
+	}
+	/**
+	 * Gets the sequence number of the operation in the given index. The records of a snapshot
+	 * all have the sequence number of the last change made before it.
+	 * @param index of the operation.
+	 * @return the sequence number.
+	 */
+	public long getSequence(int index)
+	{
+		return sequences[index];
+	}
+	/**
+	 * Gets the flight number of the inserted Airplane in the given index.
+	 * @param index of the operation.
+	 * @return the flight number, or null if it isn't an insert.
+	 */
+	public String getFlightNumber(int index)
+	{
+		return flightNumbers[index];
+	}
+	/**
+	 * Gets the first field of the operation in the given index: the distance of an insert,
+	 * the heap index of an increase or the number of inserts that follow a snapshot.
+	 * @param index of the operation.
+	 * @return the first field.
+	 */
+	public int getFirst(int index)
+	{
+		return first[index];
+	}
+	/**
+	 * Gets the second field of the operation in the given index: the elevation of an insert
+	 * or the new Approach Code of an increase.
+	 * @param index of the operation.
+	 * @return the second field.
+	 */
+	public int getSecond(int index)
+	{
+		return second[index];
+	}
+	/**
+	 * Gets the Approach Code of the inserted Airplane in the given index.
+	 * @param index of the operation.
+	 * @return the Approach Code.
+	 */
+	public int getApproachCode(int index)
+	{
+		return approachCodes[index];
+	}
+	/**
+	 * Gets the largest number of Airplanes that are in the heap at once during this trace.
+	 * @return the peak heap size.
+	 */
+	public int getPeakSize()
+	{
+		int heapSize = 0;
+		int peak = 0;
+		for(int i = 0; i < size; i++)
+		{
+			if(ops[i] == INSERT)
+			{
+				peak = Math.max(peak, ++heapSize);
+			}
+			else if(ops[i] == EXTRACT)
+			{
+				heapSize--;
+			}
+			else if(ops[i] == CLEAR || ops[i] == SNAPSHOT)
+			{
+				heapSize = 0;
+			}
+		}
+		return peak;
+	}
+	/**
+	 * Adds an operation to the end of this trace, growing the arrays if they are full.
+	 */
+	private void add(byte op, long time, long recordSequence, String flightNumber,
+			int firstField, int secondField, int approachCode)
+	{
+		if(size == ops.length)
+		{
+			int newCapacity = ops.length * 2;
+			ops = Arrays.copyOf(ops, newCapacity);
+			times = Arrays.copyOf(times, newCapacity);
+			sequences = Arrays.copyOf(sequences, newCapacity);
+			flightNumbers = Arrays.copyOf(flightNumbers, newCapacity);
+			first = Arrays.copyOf(first, newCapacity);
+			second = Arrays.copyOf(second, newCapacity);
+			approachCodes = Arrays.copyOf(approachCodes, newCapacity);
+		}
+		ops[size] = op;
+		times[size] = time;
+		sequences[size] = recordSequence;
+		flightNumbers[size] = flightNumber;
+		first[size] = firstField;
+		second[size] = secondField;
+		approachCodes[size] = approachCode;
+		size++;
+	}
+
+	// Marks the start of a trace file, "ATCT".
+	static final int MAGIC = 0x41544354;
+	static final short VERSION = 2;
+	// Operation codes of the records.
+	public static final byte INSERT = 1;
+	public static final byte INCREASE = 2;
+	public static final byte EXTRACT = 3;
+	public static final byte CLEAR = 4;
+	public static final byte SNAPSHOT = 5; // Clears the heap, and tells how many inserts rebuild it.
+	private static final int DEFAULT_CAPACITY = 64;
+
+	private byte[] ops = new byte[DEFAULT_CAPACITY];
+	private long[] times = new long[DEFAULT_CAPACITY];
+	private long[] sequences = new long[DEFAULT_CAPACITY];
+	private String[] flightNumbers = new String[DEFAULT_CAPACITY];
+	private int[] first = new int[DEFAULT_CAPACITY];
+	private int[] second = new int[DEFAULT_CAPACITY];
+	private int[] approachCodes = new int[DEFAULT_CAPACITY];
+	private int size;
+	private long time; // Time of the last record read, in nanoseconds since the trace started.
+	private long sequence; // Sequence number of the last record read.
+	private byte[] bytes; // Buffer for reading records.
+}